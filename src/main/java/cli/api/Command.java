@@ -10,4 +10,10 @@ import java.lang.annotation.Target;
 public @interface Command {
     public String key();
     public String description() default "";
+
+    /**
+     * Time in milliseconds the command may take before it is interrupted, 0 uses the timeout of the interpreter.
+     * Can be overridden per invocation with the --timeout flag.
+     */
+    public long timeout() default 0;
 }
@@ -2,6 +2,8 @@ package cli.api;
 
 import cli.internal.CommandLineInterpreter;
 
+import java.io.IOException;
+
 public interface CommandInterpreter {
 
     /**
@@ -36,4 +38,57 @@ public interface CommandInterpreter {
      * @param filename name of the file with the instructions for the interpreter
      */
     void startFromFile(String filename, boolean debugMode);
+
+    /**
+     * Starts the interpreter with instructions from a file that should complete within the timeout.
+     *
+     * @param filename      name of the file with the instructions for the interpreter
+     * @param timeoutMillis time the complete script may take in milliseconds, 0 for no deadline
+     */
+    void startFromFile(String filename, boolean debugMode, long timeoutMillis);
+
+    /**
+     * Replays a script across a number of concurrent interpreter sessions and prints the throughput and latency
+     * percentiles per command key. Every session has its own variables, history and command instances.
+     *
+     * @param filename          name of the script, e.g. a file written with write-script
+     * @param sessions          number of concurrent sessions
+     * @param iterations        number of times every session runs the script
+     * @param commandsPerSecond target command rate over all sessions, 0 or less runs the sessions closed-loop
+     */
+    void startReplay(String filename, int sessions, int iterations, double commandsPerSecond);
+
+    /**
+     * Sets the sink that receives all output of the interpreter, by default human-readable text on System.out.
+     *
+     * @param sink sink to write to, e.g. @see{@link OutputSink#jsonLines(java.io.PrintStream)}
+     */
+    void setOutputSink(OutputSink sink);
+
+    /**
+     * Sets the time in milliseconds a command may take before it is interrupted, for commands that do not set a
+     * timeout in their @see{@link Command} annotation. 0, the default, means no timeout.
+     *
+     * @param timeoutMillis the timeout in milliseconds
+     */
+    void setCommandTimeout(long timeoutMillis);
+
+    /**
+     * Loads the classes with @see{@link Command} methods from a directory or jar in an isolated class loader and adds
+     * their commands. Loading a path again reloads it: the commands and instances of the previously loaded classes
+     * are discarded and replaced, variables are kept.
+     * Can be called from another thread while the interpreter is running; a command that is already running
+     * finishes on the class it was started with.
+     *
+     * @param path directory or jar with compiled command classes
+     */
+    void loadCommands(String path) throws IOException;
+
+    /**
+     * Removes the commands that were loaded from a directory or jar and discards their instances.
+     * Can be called from another thread while the interpreter is running.
+     *
+     * @param path directory or jar that was loaded with @see{@link #loadCommands(String)}
+     */
+    void unloadCommands(String path) throws IOException;
 }
@@ -0,0 +1,24 @@
+package cli.api;
+
+/**
+ * Outcome of a single command line, passed to the @see{@link OutputSink}.
+ *
+ * @param input         the line as it was executed
+ * @param command       key of the command, null if the line could not be parsed
+ * @param status        whether the command completed, failed, timed out or was cancelled
+ * @param value         value returned by the command, null if it returned nothing
+ * @param error         description of the error, null if the command completed
+ * @param durationNanos time it took to execute the line in nanoseconds
+ * @param source        name of the script the line came from, null for the interactive shell
+ * @param line          line number in the script, 0 for the interactive shell
+ */
+public record CommandResult(String input, String command, Status status, Object value, String error,
+                            long durationNanos, String source, int line) {
+
+    public enum Status {
+        OK,
+        ERROR,
+        TIMEOUT,
+        CANCELLED
+    }
+}
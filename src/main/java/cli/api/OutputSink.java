@@ -0,0 +1,87 @@
+package cli.api;
+
+import cli.internal.AsyncOutputSink;
+import cli.internal.JsonLinesOutputSink;
+import cli.internal.TextOutputSink;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Destination for everything the interpreter outputs.
+ */
+public interface OutputSink {
+
+    /**
+     * Creates a sink that writes human-readable text, this is the default of the interpreter.
+     *
+     * @param out stream to write to
+     * @return new OutputSink
+     */
+    static OutputSink text(PrintStream out) {
+        return new TextOutputSink(out);
+    }
+
+    /**
+     * Creates a sink that writes a JSON object per line for every command result and every line of text output.
+     *
+     * @param out stream to write to
+     * @return new OutputSink
+     */
+    static OutputSink jsonLines(PrintStream out) {
+        return new JsonLinesOutputSink(out);
+    }
+
+    /**
+     * Wraps a sink so that formatting and writing happen on a separate thread instead of the command thread.
+     * The wrapped sink is flushed whenever the queue runs empty, so it can write to a stream without autoflush.
+     * Mutable values are converted to a string on the command thread, everything else is formatted on the writer.
+     *
+     * @param sink     sink to write to
+     * @param capacity number of pending writes after which the command thread waits for the writer
+     * @return new OutputSink
+     */
+    static OutputSink async(OutputSink sink, int capacity) {
+        return new AsyncOutputSink(sink, capacity);
+    }
+
+    /**
+     * Creates a sink that discards all output.
+     *
+     * @return new OutputSink
+     */
+    static OutputSink discard() {
+        return new TextOutputSink(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Shows the shell prefix before the next line is read.
+     *
+     * @param shellPrefix the prefix
+     */
+    void prompt(String shellPrefix);
+
+    /**
+     * Writes text output, e.g. help or printed variables.
+     *
+     * @param text text to write
+     */
+    void println(Object text);
+
+    /**
+     * Writes the result of a command line.
+     *
+     * @param result result of the command
+     */
+    void result(CommandResult result);
+
+    /**
+     * Writes all pending output.
+     */
+    void flush();
+
+    /**
+     * Writes all pending output and releases the sink.
+     */
+    void close();
+}
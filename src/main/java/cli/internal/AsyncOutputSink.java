@@ -0,0 +1,151 @@
+package cli.internal;
+
+import cli.api.CommandResult;
+import cli.api.OutputSink;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes output to another sink on a separate writer thread.
+ * Writes are queued in order; when the queue is full the command thread waits until the writer catches up.
+ */
+public class AsyncOutputSink implements OutputSink {
+    private final OutputSink sink;
+    private final BlockingQueue<Runnable> queue;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    public AsyncOutputSink(OutputSink sink, int capacity) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::write, "cli-output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void prompt(String shellPrefix) {
+        enqueue(() -> {
+            sink.prompt(shellPrefix);
+            sink.flush();
+        });
+    }
+
+    @Override
+    public void println(Object text) {
+        Object snapshot = snapshot(text);
+        enqueue(() -> sink.println(snapshot));
+    }
+
+    @Override
+    public void result(CommandResult result) {
+        CommandResult snapshot = new CommandResult(result.input(), result.command(), result.status(), snapshot(result.value()),
+                result.error(), result.durationNanos(), result.source(), result.line());
+        enqueue(() -> sink.result(snapshot));
+    }
+
+    /**
+     * Formats a value on the command thread, because it can be stored in a variable and changed by later commands
+     * while the writer is still formatting it. Immutable values are passed as they are, so the wrapped sink can
+     * still write numbers and booleans as such.
+     *
+     * @param value value to format
+     * @return the value itself if it is immutable, otherwise its string representation
+     */
+    private static Object snapshot(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Character ||
+                value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte ||
+                value instanceof Double || value instanceof Float) {
+            return value;
+        }
+
+        try {
+            return value.toString();
+        } catch (RuntimeException | StackOverflowError e) {
+            return "Could not format value: " + e;
+        }
+    }
+
+    /**
+     * Waits until all writes queued before this call are written.
+     */
+    @Override
+    public void flush() {
+        if (closed) return;
+
+        CountDownLatch written = new CountDownLatch(1);
+        enqueue(() -> {
+            try {
+                sink.flush();
+            } finally {
+                written.countDown();
+            }
+        });
+
+        try {
+            while (!written.await(100, TimeUnit.MILLISECONDS)) {
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        closed = true;
+        writer.interrupt();
+        sink.close();
+    }
+
+    private void enqueue(Runnable write) {
+        if (closed) throw new IllegalStateException("Output sink is closed.");
+        checkWriter();
+
+        try {
+            while (!queue.offer(write, 100, TimeUnit.MILLISECONDS)) {
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fails instead of waiting forever for a writer that has stopped.
+     */
+    private void checkWriter() {
+        if (!writer.isAlive()) throw new IllegalStateException("Output writer has stopped.");
+    }
+
+    private void report(Throwable t) {
+        try {
+            sink.println("Could not write output: " + t);
+        } catch (Throwable ignored) {
+            // The sink itself is failing, there is nowhere left to report to.
+        }
+    }
+
+    private void write() {
+        try {
+            while (!closed) {
+                Runnable write = queue.take();
+                try {
+                    write.run();
+
+                    // Flush once per batch instead of once per write.
+                    if (queue.isEmpty()) sink.flush();
+                } catch (Throwable t) {
+                    // A failing write should not stop the writer.
+                    report(t);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed, everything has been flushed already.
+        }
+    }
+}
@@ -4,24 +4,16 @@ import java.util.HashMap;
 
 /**
  * Class that holds the state for the CLI.
- * Uses a singleton pattern.
+ * Every interpreter session owns its own state, so concurrent sessions do not share variables.
  */
 public class CliState {
 
-    private static CliState instance;
     private final HashMap<String, Object> variables;
 
-    private CliState() {
+    public CliState() {
         variables = new HashMap<>();
     }
 
-    public static CliState getInstance() {
-        if (instance == null) {
-            instance = new CliState();
-        }
-        return instance;
-    }
-
     public void addVariable(String name, Object object) {
         variables.put(name, object);
     }
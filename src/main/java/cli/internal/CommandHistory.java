@@ -3,21 +3,16 @@ package cli.internal;
 import java.io.*;
 import java.util.Stack;
 
+/**
+ * Holds the commands that were executed by a single interpreter session.
+ */
 public class CommandHistory {
-    private static CommandHistory instance;
     private final Stack<String> history;
 
-    private CommandHistory() {
+    public CommandHistory() {
         history = new Stack<>();
     }
 
-    public static CommandHistory getInstance() {
-        if (instance == null) {
-            instance = new CommandHistory();
-        }
-        return instance;
-    }
-
     public void addToHistory(String command) {
         history.add(command);
     }
@@ -2,39 +2,63 @@ package cli.internal;
 
 import cli.api.Command;
 import cli.api.CommandInterpreter;
+import cli.api.CommandResult;
+import cli.api.OutputSink;
 
 import java.io.*;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class CommandLineInterpreter implements CommandInterpreter {
-    private final Class[] cls;
+    private final ArrayList<Class<?>> cls = new ArrayList<>();
+    private final HashMap<Path, CommandLoader> loaders = new HashMap<>();
     private final HashMap<String, Method> commands = new HashMap<>();
     private final HashMap<Class<?>, Object> instances = new HashMap<>();
-    PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+    // Guards cls, loaders, commands and instances, which loadCommands and unloadCommands can change from another thread.
+    private final Object commandLock = new Object();
+    private final CliState state = new CliState();
+    private final CommandHistory history = new CommandHistory();
+    OutputSink out = OutputSink.text(new PrintStream(System.out, true, StandardCharsets.UTF_8));
     private String shellPrefix = "";
     private String description = "";
-    private boolean interactive = false;
+    boolean interactive = false;
     private boolean fileLoop = false;
+    // Set by execute() when the last line named an unknown command, which does not stop a script.
+    private boolean commandNotFound = false;
+    private long commandTimeout = 0;
+    // Deadline of the running script in System.nanoTime(), 0 when there is none.
+    private long scriptDeadline = 0;
+    private volatile Future<Object> running;
+    private int timeouts = 0;
+    private int cancellations = 0;
+    // Commands run on daemon workers, so a command that ignores interruption can be abandoned.
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread worker = new Thread(r, "cli-command-worker");
+        worker.setDaemon(true);
+        return worker;
+    });
 
     public CommandLineInterpreter(Class[] cls, String shellPrefix, String description) {
-        this.cls = cls;
+        this.cls.addAll(Arrays.asList((Class<?>[]) cls));
         this.shellPrefix = shellPrefix;
         this.description = description;
         initialiseAnnotationCommands();
     }
 
     public CommandLineInterpreter(Class[] cls, String shellPrefix) {
-        this.cls = cls;
+        this.cls.addAll(Arrays.asList((Class<?>[]) cls));
         this.shellPrefix = shellPrefix;
         initialiseAnnotationCommands();
     }
 
     public CommandLineInterpreter(Class[] cls) {
-        this.cls = cls;
+        this.cls.addAll(Arrays.asList((Class<?>[]) cls));
         initialiseAnnotationCommands();
     }
 
@@ -45,58 +69,120 @@ public class CommandLineInterpreter implements CommandInterpreter {
 
             interactive = true;
 
-            run(br);
+            // Ctrl-C cancels the running command, without a running command it stops the application as before.
+            InterruptHandler interrupts = InterruptHandler.install(this::cancelRunningCommand);
+            try {
+                run(br);
+            } finally {
+                if (interrupts != null) interrupts.restore();
+            }
 
             br.close();
         } catch (Exception e) {
             out.println(ExceptionHandler.handleException(e));
         }
+
+        if (timeouts > 0 || cancellations > 0) {
+            out.println(timeouts + " command(s) timed out, " + cancellations + " command(s) cancelled.");
+        }
+        out.flush();
     }
 
     @Override
     public void startFromFile(String filename, boolean debugMode) {
+        startFromFile(filename, debugMode, 0);
+    }
+
+    @Override
+    public void startFromFile(String filename, boolean debugMode, long timeoutMillis) {
         try {
-            runFile(filename, debugMode);
+            runFile(filename, debugMode, timeoutMillis);
         } catch (Exception e) {
             out.println(ExceptionHandler.handleException(e));
+            out.close();
             System.exit(-1);
         }
+        out.flush();
+    }
+
+    @Override
+    public void startReplay(String filename, int sessions, int iterations, double commandsPerSecond) {
+        try {
+            out.println(new ReplayDriver(getCommandClasses(), commandTimeout).replay(filename, sessions, iterations, commandsPerSecond));
+        } catch (Exception e) {
+            out.println(ExceptionHandler.handleException(e));
+        }
+        out.flush();
+    }
+
+    @Override
+    public void setOutputSink(OutputSink sink) {
+        this.out = sink;
+    }
+
+    @Override
+    public void setCommandTimeout(long timeoutMillis) {
+        this.commandTimeout = timeoutMillis;
+    }
+
+    /**
+     * Cancels the running command.
+     *
+     * @return false if there was no running command
+     */
+    private boolean cancelRunningCommand() {
+        Future<Object> command = running;
+        if (command == null) return false;
+
+        command.cancel(true);
+        return true;
     }
 
     public void runFile(String filename, boolean debugMode) throws IOException {
-        BufferedReader br = new BufferedReader(new FileReader(filename));
+        runFile(filename, debugMode, 0);
+    }
 
+    /**
+     * Runs a script, stopping at the first command that fails or does not finish before the deadline.
+     *
+     * @param filename      name of the script
+     * @param debugMode     prints every line before executing it
+     * @param timeoutMillis time the complete script may take in milliseconds, 0 for no deadline
+     */
+    public void runFile(String filename, boolean debugMode, long timeoutMillis) throws IOException {
         String input;
         int line = 1;
 
         fileLoop = true;
 
-        while ((input = br.readLine()) != null && !Constants.exitKeywords.contains(input) && fileLoop) {
-            try {
-                input = input.trim();
-                input = removeInlineComments(input);
+        // A script called from another script can only shorten the deadline of the caller.
+        long outerDeadline = scriptDeadline;
+        if (timeoutMillis > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            if (scriptDeadline == 0 || deadline - scriptDeadline < 0) scriptDeadline = deadline;
+        }
 
-                if (isValidLine(input)) {
-                    if (debugMode) out.println(input);
-                    handleInput(input);
-                }
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            while ((input = br.readLine()) != null && !Constants.exitKeywords.contains(input) && fileLoop) {
+                CommandResult result = execute(input, filename, line++, debugMode);
 
-                line++;
-            } catch (Exception e) {
-                out.println("Error at command: '" + input + "', at line " + line + ", in file \"" + filename + "\".");
-                String output = ExceptionHandler.handleException(e);
-                if (output != null) out.println(output);
+                if (result == null) continue;
+                out.result(result);
 
-                if (!interactive) {
-                    out.println("Exit...");
-                    System.exit(-1);
-                }
+                // An unknown command is reported as an error, but the script continues with the next line.
+                if (result.status() != CommandResult.Status.OK && !commandNotFound) {
+                    if (!interactive) {
+                        out.println("Exit...");
+                        out.close();
+                        System.exit(-1);
+                    }
 
-                fileLoop = false;
+                    fileLoop = false;
+                }
             }
+        } finally {
+            scriptDeadline = outerDeadline;
         }
-
-        br.close();
     }
 
     /**
@@ -107,30 +193,57 @@ public class CommandLineInterpreter implements CommandInterpreter {
     private void run(BufferedReader br) throws IOException {
         String input;
 
-        out.print(shellPrefix);
+        out.prompt(shellPrefix);
 
         while ((input = br.readLine()) != null && !Constants.exitKeywords.contains(input)) {
-            try {
-                input = input.trim();
-                input = removeInlineComments(input);
+            CommandResult result = execute(input, null, 0, false);
+            if (result != null) out.result(result);
 
-                if (isValidLine(input)) {
-                    handleInput(input);
-                }
+            // This adds the prefix BEFORE the next line is read.
+            out.prompt(shellPrefix);
+        }
+    }
 
-                // This adds the prefix BEFORE the next line is read.
-                out.print(shellPrefix);
-            } catch (Exception e) {
-                out.println("Error at command: '" + input + "'.");
-                String output = ExceptionHandler.handleException(e);
-                if (output != null) out.println(output);
+    /**
+     * Executes a single line and measures how long it took.
+     *
+     * @param input     line to execute
+     * @param source    name of the script the line came from, null for the interactive shell
+     * @param line      line number in the script
+     * @param debugMode prints the line before executing it
+     * @return the result, or null if the line is a comment or empty
+     */
+    private CommandResult execute(String input, String source, int line, boolean debugMode) {
+        long start = System.nanoTime();
+        String command = null;
+        commandNotFound = false;
 
-                out.print(shellPrefix);
-            }
+        try {
+            input = input.trim();
+            input = removeInlineComments(input);
+
+            if (!isValidLine(input)) return null;
+            if (debugMode) out.println(input);
+
+            command = commandKey(input);
+            Object value = handleInput(input);
+
+            return new CommandResult(input, command, CommandResult.Status.OK, value, null,
+                    System.nanoTime() - start, source, line);
+        } catch (TimeoutException e) {
+            return new CommandResult(input, command, CommandResult.Status.TIMEOUT, null, ExceptionHandler.handleException(e),
+                    System.nanoTime() - start, source, line);
+        } catch (CancellationException e) {
+            return new CommandResult(input, command, CommandResult.Status.CANCELLED, null, ExceptionHandler.handleException(e),
+                    System.nanoTime() - start, source, line);
+        } catch (Exception e) {
+            commandNotFound = e instanceof CommandNotFoundException;
+            return new CommandResult(input, command, CommandResult.Status.ERROR, null, ExceptionHandler.handleException(e),
+                    System.nanoTime() - start, source, line);
         }
     }
 
-    private String removeInlineComments(String input) {
+    static String removeInlineComments(String input) {
         ArrayList<Integer> quoteIndexes = new ArrayList<>();
         ArrayList<Integer> commentIndexes = new ArrayList<>();
 
@@ -178,7 +291,7 @@ public class CommandLineInterpreter implements CommandInterpreter {
      * @param input line to check
      * @return boolean that tells if the line is valid and should be handled and otherwise ignored
      */
-    private boolean isValidLine(String input) {
+    static boolean isValidLine(String input) {
         return !input.isEmpty() && !input.startsWith("#");
     }
 
@@ -186,80 +299,195 @@ public class CommandLineInterpreter implements CommandInterpreter {
      * Handles the input.
      *
      * @param input line to handle
+     * @return the value returned by the command, null if it returned nothing
      */
-    private void handleInput(String input) throws Exception {
+    Object handleInput(String input) throws Exception {
         boolean store = false;
         String varName = "";
-        String commandString;
         int assignmentIndex = input.indexOf("=");
 
         if (assignmentIndex != -1) {
             varName = input.substring(0, assignmentIndex).trim().replace(" ", "");
-            commandString = input.substring(assignmentIndex + 1).trim();
             store = true;
-        } else {
-            commandString = input;
         }
 
+        ArrayList<String> args = splitArguments(input);
+        String command = args.remove(0);
+
+        Object value = handleCommands(command, args, store, varName);
+        history.addToHistory(input);
+        return value;
+    }
+
+    /**
+     * Returns the key of the command on a line, ignoring a leading variable assignment.
+     *
+     * @param input line to inspect
+     * @return the command key
+     */
+    static String commandKey(String input) {
+        return splitArguments(input).get(0);
+    }
+
+    /**
+     * Splits the command part of a line into the command key followed by its arguments.
+     *
+     * @param input line to split
+     * @return list with the command key as first element
+     */
+    private static ArrayList<String> splitArguments(String input) {
+        int assignmentIndex = input.indexOf("=");
+        String commandString = assignmentIndex != -1 ? input.substring(assignmentIndex + 1).trim() : input;
+
         // Code that allows users to use double quotes for indicating string with spaces.
         ArrayList<String> args = new ArrayList<>();
         Matcher m = Pattern.compile(Constants.doubleQuoteRegex).matcher(commandString);
         while (m.find())
             args.add(m.group(1).replace("\"", "'"));
 
-        String command = args.remove(0);
+        return args;
+    }
+
+    private Method getCommand(String key) {
+        synchronized (commandLock) {
+            return commands.get(key);
+        }
+    }
 
-        handleCommands(command, args, store, varName);
-        CommandHistory.getInstance().addToHistory(input);
+    /**
+     * @return a copy of the commands, which stays the same while commands are loaded
+     */
+    private Map<String, Method> getCommands() {
+        synchronized (commandLock) {
+            return new HashMap<>(commands);
+        }
+    }
+
+    private Class[] getCommandClasses() {
+        synchronized (commandLock) {
+            return cls.toArray(new Class[0]);
+        }
     }
 
     private void initialiseAnnotationCommands() {
         for (Class c : cls) {
-            Method[] methods = c.getMethods();
-            for (Method m : methods) {
-                Command metadata = m.getAnnotation(Command.class);
-                if (metadata != null) {
-                    String commandName = (metadata.key().isBlank() || metadata.key().isEmpty()) ? m.getName() : metadata.key();
+            addAnnotationCommands(c, true);
+        }
+    }
+
+    /**
+     * Adds the methods of the class with the @see{@link Command} annotation to the commands.
+     *
+     * @param c       class to scan
+     * @param replace whether a command replaces an existing command with the same key
+     */
+    private void addAnnotationCommands(Class<?> c, boolean replace) {
+        Method[] methods = c.getMethods();
+        for (Method m : methods) {
+            Command metadata = m.getAnnotation(Command.class);
+            if (metadata != null) {
+                String commandName = (metadata.key().isBlank() || metadata.key().isEmpty()) ? m.getName() : metadata.key();
+                if (replace) {
                     commands.put(commandName, m);
+                } else {
+                    commands.putIfAbsent(commandName, m);
                 }
             }
         }
     }
 
-    private void handleCommands(String command, ArrayList<String> args, boolean store, String varName) throws Exception {
-        if (store && (commands.containsKey(varName) ||
+    /**
+     * Removes the commands of the classes and discards their instances. Commands of other classes with the same key
+     * that were replaced by the removed classes become available again, the most recently added class wins.
+     *
+     * Should be called while holding the commandLock.
+     *
+     * @param removed classes to remove
+     */
+    private void removeAnnotationCommands(List<Class<?>> removed) {
+        cls.removeAll(removed);
+        commands.values().removeIf(m -> removed.contains(m.getDeclaringClass()));
+        instances.keySet().removeAll(removed);
+
+        for (int i = cls.size() - 1; i >= 0; i--) {
+            addAnnotationCommands(cls.get(i), false);
+        }
+    }
+
+    @Override
+    public void loadCommands(String path) throws IOException {
+        Path commandPath = Path.of(path).toAbsolutePath().normalize();
+
+        // Load the new classes first, so the old commands stay available when loading fails.
+        CommandLoader loader = new CommandLoader(commandPath);
+        CommandLoader previous;
+        synchronized (commandLock) {
+            previous = loaders.put(commandPath, loader);
+            if (previous != null) removeAnnotationCommands(previous.getClasses());
+
+            for (Class<?> c : loader.getClasses()) {
+                cls.add(c);
+                addAnnotationCommands(c, true);
+            }
+        }
+        if (previous != null) previous.close();
+
+        out.println((previous != null ? "Reloaded " : "Loaded ") + loader.getClasses().size() + " class(es) from " + commandPath + ".");
+    }
+
+    @Override
+    public void unloadCommands(String path) throws IOException {
+        Path commandPath = Path.of(path).toAbsolutePath().normalize();
+        CommandLoader loader;
+        synchronized (commandLock) {
+            loader = loaders.remove(commandPath);
+
+            if (loader == null) {
+                throw new IllegalArgumentException("No commands loaded from " + commandPath + ".");
+            }
+
+            removeAnnotationCommands(loader.getClasses());
+        }
+        loader.close();
+        out.println("Unloaded " + loader.getClasses().size() + " class(es) from " + commandPath + ".");
+    }
+
+    private Object handleCommands(String command, ArrayList<String> args, boolean store, String varName) throws Exception {
+        if (store && (getCommand(varName) != null ||
                 Constants.exitKeywords.contains(varName) ||
-                Constants.printKeyword.equals(varName)) ||
+                Constants.printKeyword.equals(varName) ||
+                Constants.replayKeyword.equals(varName) ||
+                Constants.loadKeyword.equals(varName) ||
+                Constants.unloadKeyword.equals(varName)) ||
                 Constants.helpKeyword.equals(varName)
         ) {
             throw new IllegalArgumentException(varName + " is a reserved keyword");
         }
 
-        Method m = commands.get(command);
+        Method m = getCommand(command);
 
         if (m != null) {
-            handleAnnotationCommand(m, args, store, varName);
-            return;
+            return handleAnnotationCommand(m, command, args, store, varName);
         }
 
         switch (command) {
             case Constants.printKeyword -> {
                 printVariable(args);
-                return;
+                return null;
             }
             case Constants.helpKeyword -> {
                 if (args.get(0) != null) {
-                    Set<String> commandKeys = commands.keySet();
+                    Map<String, Method> current = getCommands();
                     ArrayList<String> foundKeys = new ArrayList<>();
 
-                    for (String c: commandKeys) {
+                    for (String c: current.keySet()) {
                         if (c.contains(args.get(0))) foundKeys.add(c);
                     }
 
                     if (foundKeys.size() > 0) {
                         out.println("Commands found with search:" + System.lineSeparator());
                         for (String c : foundKeys) {
-                            Method commandMethod = commands.get(c);
+                            Method commandMethod = current.get(c);
                             out.println(ParameterResolver.generateHelp(commandMethod, commandMethod.getAnnotation(Command.class)));
                         }
                     }
@@ -267,37 +495,85 @@ public class CommandLineInterpreter implements CommandInterpreter {
                 } else {
                     printHelp();
                 }
-                return;
+                return null;
             }
             case "call" -> {
                 if ((args.contains("-f") || args.contains("--file"))) {
                     String filename = args.get(1).replace("'", "");
                     boolean debug = args.contains("-d") || args.contains("--debug");
-                    runFile(filename, debug);
+                    long timeout = Long.parseLong(getFlagValue(args, Constants.timeoutFlag, Constants.timeoutFlag, "0"));
+                    runFile(filename, debug, timeout);
                 } else {
                     throw new IllegalArgumentException("No file given for call");
                 }
-                return;
+                return null;
             }
             case "write-script" -> {
                 if ((args.contains("-f") || args.contains("--file"))) {
                     String filename = args.get(1).replace("'", "");
-                    CommandHistory.getInstance().writeHistoryToFile(filename);
+                    history.writeHistoryToFile(filename);
                 } else {
                     throw new IllegalArgumentException("No output file given");
                 }
-                return;
+                return null;
+            }
+            case Constants.loadKeyword -> {
+                if ((args.contains("-f") || args.contains("--file"))) {
+                    loadCommands(getFlagValue(args, "-f", "--file", "").replace("'", ""));
+                } else {
+                    throw new IllegalArgumentException("No directory or jar given for load");
+                }
+                return null;
+            }
+            case Constants.unloadKeyword -> {
+                if ((args.contains("-f") || args.contains("--file"))) {
+                    unloadCommands(getFlagValue(args, "-f", "--file", "").replace("'", ""));
+                } else {
+                    throw new IllegalArgumentException("No directory or jar given for unload");
+                }
+                return null;
+            }
+            case Constants.replayKeyword -> {
+                if ((args.contains("-f") || args.contains("--file"))) {
+                    String filename = getFlagValue(args, "-f", "--file", "").replace("'", "");
+                    int sessions = Integer.parseInt(getFlagValue(args, "-s", "--sessions", "1"));
+                    int iterations = Integer.parseInt(getFlagValue(args, "-n", "--iterations", "1"));
+                    double rate = Double.parseDouble(getFlagValue(args, "-r", "--rate", "0"));
+                    out.println(new ReplayDriver(getCommandClasses(), commandTimeout).replay(filename, sessions, iterations, rate));
+                } else {
+                    throw new IllegalArgumentException("No file given for replay");
+                }
+                return null;
             }
         }
 
         if (store) {
             if (command.matches(Constants.strRegex) || Pattern.matches(Constants.fpRegex, command) || command.equals("true") || command.equals("false")) {
                 storeVariable(varName, command);
-                return;
+                return null;
             }
         }
 
-        out.println("Command '" + command + "' not found.");
+        throw new CommandNotFoundException("Command '" + command + "' not found.");
+    }
+
+    /**
+     * Returns the value following one of the given flags.
+     *
+     * @param args         given arguments
+     * @param shortKey     short form of the flag e.g. -f
+     * @param longKey      long form of the flag e.g. --file
+     * @param defaultValue value returned when the flag is not present
+     * @return the value of the flag
+     */
+    private String getFlagValue(ArrayList<String> args, String shortKey, String longKey, String defaultValue) {
+        int index = args.indexOf(shortKey);
+        if (index == -1) index = args.indexOf(longKey);
+        if (index == -1) return defaultValue;
+        if (index + 1 >= args.size()) {
+            throw new IllegalArgumentException("Missing argument for the flag " + longKey);
+        }
+        return args.get(index + 1);
     }
 
     /**
@@ -307,7 +583,7 @@ public class CommandLineInterpreter implements CommandInterpreter {
         //TODO: add explanation about default commands and maybe allow a title and version to be added.
         if (!description.isEmpty()) out.println(description);
         out.println("Appending a command with the -h flag will print the description and parameters for the command.");
-        commands.forEach((key, value) -> out.println(ParameterResolver.generateHelp(value, value.getAnnotation(Command.class))));
+        getCommands().forEach((key, value) -> out.println(ParameterResolver.generateHelp(value, value.getAnnotation(Command.class))));
     }
 
     /**
@@ -317,7 +593,7 @@ public class CommandLineInterpreter implements CommandInterpreter {
      */
     private void printVariable(ArrayList<String> args) {
         for (String arg : args) {
-            Object var = CliState.getInstance().getVariable(arg);
+            Object var = state.getVariable(arg);
 
             if (var != null) {
                 out.println(var);
@@ -328,7 +604,7 @@ public class CommandLineInterpreter implements CommandInterpreter {
     }
 
     /**
-     * Stores a variable to the @see{@link CliState} instance.
+     * Stores a variable to the @see{@link CliState} of this session.
      *
      * @param varName name for the variable
      * @param value   value to save
@@ -344,49 +620,150 @@ public class CommandLineInterpreter implements CommandInterpreter {
             var = value;
         }
 
-        CliState.getInstance().addVariable(varName, var);
+        state.addVariable(varName, var);
     }
 
     /**
      * Handles the case where a command is used that is in the list of annotated methods.
      *
-     * @param m    the annotated method
-     * @param args the arguments to pass through
+     * @param m       the annotated method
+     * @param command key the command was called with
+     * @param args    the arguments to pass through
+     * @return the value returned by the method
      */
-    private void handleAnnotationCommand(Method m, ArrayList<String> args, boolean store, String varName) throws Exception {
+    private Object handleAnnotationCommand(Method m, String command, ArrayList<String> args, boolean store, String varName) throws Exception {
+        Command metadata = m.getAnnotation(Command.class);
 
         if (args.size() > 0) {
-            Command metadata = m.getAnnotation(Command.class);
             switch (args.get(0)) {
                 case "-d", "--description" -> {
                     out.println(metadata.description());
-                    return;
+                    return null;
                 }
                 case "-h", "--help" -> {
                     out.println(ParameterResolver.generateHelp(m, metadata));
-                    return;
+                    return null;
                 }
                 default -> {
                 }
             }
         }
 
-        Class<?> clazz = m.getDeclaringClass();
-        Object obj;
-        if (instances.containsKey(clazz)) {
-            obj = instances.get(clazz);
-        } else {
-            obj = clazz.getDeclaredConstructor().newInstance();
-            instances.put(clazz, obj);
+        long timeout = metadata.timeout() > 0 ? metadata.timeout() : commandTimeout;
+        int timeoutIndex = args.indexOf(Constants.timeoutFlag);
+        if (timeoutIndex != -1 && !ParameterResolver.hasKey(m, Constants.timeoutFlag)) {
+            timeout = Long.parseLong(getFlagValue(args, Constants.timeoutFlag, Constants.timeoutFlag, "0"));
+            args.remove(timeoutIndex + 1);
+            args.remove(timeoutIndex);
         }
 
-        List<Object> arguments = ParameterResolver.processArguments(args, m);
+        List<Object> arguments = ParameterResolver.processArguments(args, m, state, out);
 
         // Call method with arguments
-        Object returnValue = m.invoke(obj, arguments.toArray());
+        Object returnValue = invoke(m, arguments, command, timeout);
 
         if (store) {
-            CliState.getInstance().addVariable(varName, returnValue);
+            state.addVariable(varName, returnValue);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Invokes the method on a worker and waits until it returns, the timeout or script deadline expires
+     * or it is cancelled with Ctrl-C. A command that does not finish in time is interrupted and abandoned.
+     *
+     * @param m         the annotated method
+     * @param arguments the arguments to pass through
+     * @param key       key of the command
+     * @param timeout   timeout of the command in milliseconds, 0 for no timeout
+     * @return the value returned by the method
+     */
+    private Object invoke(Method m, List<Object> arguments, String key, long timeout) throws Exception {
+        if (scriptDeadline != 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(scriptDeadline - System.nanoTime());
+            if (remaining <= 0) {
+                timeouts++;
+                throw new TimeoutException("Script deadline passed before command '" + key + "'.");
+            }
+            if (timeout == 0 || remaining < timeout) timeout = remaining;
+        }
+
+        Class<?> clazz = m.getDeclaringClass();
+        Object obj = getInstance(clazz);
+
+        AtomicBoolean started = new AtomicBoolean(false);
+        CountDownLatch finished = new CountDownLatch(1);
+        Future<Object> command = workers.submit(() -> {
+            started.set(true);
+            try {
+                return m.invoke(obj, arguments.toArray());
+            } finally {
+                finished.countDown();
+            }
+        });
+        running = command;
+
+        try {
+            return timeout > 0 ? command.get(timeout, TimeUnit.MILLISECONDS) : command.get();
+        } catch (TimeoutException e) {
+            command.cancel(true);
+            discardIfAbandoned(clazz, started, finished);
+            timeouts++;
+            throw new TimeoutException("Command '" + key + "' timed out after " + timeout + " ms.");
+        } catch (CancellationException e) {
+            discardIfAbandoned(clazz, started, finished);
+            cancellations++;
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        } finally {
+            running = null;
+        }
+    }
+
+    /**
+     * Returns the cached instance of the class, creating it on first use.
+     *
+     * @param clazz class that declares the command
+     * @return the instance to invoke the command on
+     */
+    private Object getInstance(Class<?> clazz) throws ReflectiveOperationException {
+        synchronized (commandLock) {
+            Object obj = instances.get(clazz);
+            if (obj != null) return obj;
+        }
+
+        // Created outside the lock, so expensive setup in a constructor does not block loading commands.
+        Object created = clazz.getDeclaredConstructor().newInstance();
+        synchronized (commandLock) {
+            return instances.computeIfAbsent(clazz, c -> created);
+        }
+    }
+
+    /**
+     * Gives an interrupted command a moment to stop. A command that ignores the interrupt keeps running on its
+     * abandoned worker and may still use the instance, so later commands of the class get a new instance.
+     *
+     * @param clazz    class of the interrupted command
+     * @param started  whether the worker started the command
+     * @param finished counted down when the worker is done with the command
+     */
+    private void discardIfAbandoned(Class<?> clazz, AtomicBoolean started, CountDownLatch finished) throws InterruptedException {
+        if (started.get() && !finished.await(Constants.interruptGraceMillis, TimeUnit.MILLISECONDS)) {
+            synchronized (commandLock) {
+                instances.remove(clazz);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a line names a command that does not exist.
+     */
+    static class CommandNotFoundException extends IllegalArgumentException {
+        CommandNotFoundException(String message) {
+            super(message);
         }
     }
 }
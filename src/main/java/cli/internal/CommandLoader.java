@@ -0,0 +1,129 @@
+package cli.internal;
+
+import cli.api.Command;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Loads the command classes from a directory or jar in an isolated class loader.
+ * Loading the same path again with a new CommandLoader picks up the changed classes, after which the old
+ * loader should be closed.
+ */
+public class CommandLoader implements Closeable {
+    private final Path path;
+    private final URLClassLoader loader;
+    private final List<Class<?>> classes = new ArrayList<>();
+
+    public CommandLoader(Path path) throws IOException {
+        this.path = path;
+
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("Path " + path + " does not exist.");
+        }
+
+        this.loader = new ChildFirstClassLoader(new URL[]{path.toUri().toURL()}, CommandLoader.class.getClassLoader());
+
+        for (String name : findClassNames()) {
+            try {
+                Class<?> c = Class.forName(name, false, loader);
+                if (hasCommands(c)) classes.add(c);
+            } catch (ClassNotFoundException | LinkageError e) {
+                // Classes that cannot be loaded, e.g. because of a missing dependency, cannot be commands either.
+            }
+        }
+
+        if (classes.isEmpty()) {
+            loader.close();
+            throw new IllegalArgumentException("No commands found in " + path + ".");
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public List<Class<?>> getClasses() {
+        return classes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        loader.close();
+    }
+
+    private List<String> findClassNames() throws IOException {
+        List<String> names = new ArrayList<>();
+
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(f -> f.toString().endsWith(".class"))
+                        .forEach(f -> names.add(toClassName(path.relativize(f).toString().replace(f.getFileSystem().getSeparator(), "/"))));
+            }
+        } else {
+            try (JarFile jar = new JarFile(path.toFile())) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement().getName();
+                    if (entry.endsWith(".class")) names.add(toClassName(entry));
+                }
+            }
+        }
+
+        names.removeIf(name -> name.endsWith("module-info") || name.endsWith("package-info"));
+        return names;
+    }
+
+    private static String toClassName(String file) {
+        return file.substring(0, file.length() - ".class".length()).replace('/', '.');
+    }
+
+    private static boolean hasCommands(Class<?> c) {
+        for (Method m : c.getMethods()) {
+            if (m.getAnnotation(Command.class) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Looks up classes in its own path before asking the parent, so a reload also works for classes that are on
+     * the class path of the application. Classes of the JDK and of the CLI itself always come from the parent,
+     * otherwise the @see{@link Command} annotations would not be recognised.
+     */
+    private static class ChildFirstClassLoader extends URLClassLoader {
+
+        ChildFirstClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+
+                if (c == null && !name.startsWith("java.") && !name.startsWith("javax.") && !name.startsWith("cli.api.") && !name.startsWith("cli.internal.")) {
+                    try {
+                        c = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        // Not in this path, fall back to the parent.
+                    }
+                }
+
+                if (c == null) c = super.loadClass(name, false);
+                if (resolve) resolveClass(c);
+                return c;
+            }
+        }
+    }
+}
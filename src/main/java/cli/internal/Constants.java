@@ -6,9 +6,16 @@ import java.util.List;
 public class Constants {
     protected static final String printKeyword = "print";
     protected static final String helpKeyword = "help";
+    protected static final String replayKeyword = "replay";
+    protected static final String loadKeyword = "load";
+    protected static final String unloadKeyword = "unload";
+    protected static final String timeoutFlag = "--timeout";
+    // Time an interrupted command gets to stop before its instance is discarded.
+    protected static final long interruptGraceMillis = 100;
     protected static final ArrayList<String> exitKeywords = new ArrayList<>(List.of(new String[]{"q", "Q", "exit"}));
     protected static final char[] commentSymbols = {'#', '!'};
     protected static final String helpOutputFormat = "%-30s%-20s%-15s%s%n";
+    protected static final String replayOutputFormat = "%-30s%10s%10s%10s%12s%12s%12s%12s%12s%n";
     protected static final String doubleQuoteRegex = "([^\"]\\S*|\".+?\")\\s*";
     protected static final String strRegex = "'(.*?)'";
 
@@ -2,6 +2,8 @@ package cli.internal;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
 
 public class ExceptionHandler {
     public static String handleException(Exception e) {
@@ -10,16 +12,43 @@ public class ExceptionHandler {
         } else if (e instanceof IllegalAccessException) {
             return "Could not access method.";
         } else if (e instanceof InvocationTargetException) {
-            return "Something went wrong in called method: " + e.getStackTrace()[e.getStackTrace().length-1] +
-                    System.lineSeparator() + "Caused by " + e.getCause();
+            Throwable cause = e.getCause();
+            return "Something went wrong in called method: " + commandFrame(cause != null ? cause : e) +
+                    System.lineSeparator() + "Caused by " + cause;
         } else if (e instanceof NoSuchMethodException) {
             return "Method could not be found.";
         } else if (e instanceof IllegalArgumentException) {
             return e.getMessage();
+        } else if (e instanceof TimeoutException) {
+            return e.getMessage();
+        } else if (e instanceof CancellationException) {
+            return "Command was cancelled.";
         } else if (e instanceof ClassCastException) {
             return "Unable to cast class, \n" + e.getMessage();
         } else {
             return e.getMessage();
         }
     }
+
+    /**
+     * Finds the frame of the command method in the stack trace of an exception thrown by a command.
+     * This is the last frame before the reflection frames that invoked the command, the frames above it can be
+     * library code called by the command.
+     *
+     * @param t exception thrown by the command
+     * @return the frame of the command method
+     */
+    private static String commandFrame(Throwable t) {
+        StackTraceElement[] trace = t.getStackTrace();
+
+        for (int i = 1; i < trace.length; i++) {
+            String className = trace[i].getClassName();
+            if (className.startsWith("jdk.internal.reflect.") ||
+                    (className.equals("java.lang.reflect.Method") && trace[i].getMethodName().equals("invoke"))) {
+                return trace[i - 1].toString();
+            }
+        }
+
+        return trace.length > 0 ? trace[0].toString() : "unknown location";
+    }
 }
@@ -0,0 +1,71 @@
+package cli.internal;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Handles Ctrl-C (SIGINT) in the interactive shell.
+ * Uses sun.misc.Signal through reflection, so the CLI does not depend on the jdk.unsupported module.
+ * On a runtime without it Ctrl-C keeps its default behaviour.
+ */
+class InterruptHandler {
+    private final Method handle;
+    private final Object signal;
+    private final Object previous;
+
+    private InterruptHandler(Method handle, Object signal, Object previous) {
+        this.handle = handle;
+        this.signal = signal;
+        this.previous = previous;
+    }
+
+    /**
+     * Installs the handler. When the interrupt is not handled, the previous handler is called, which by default
+     * stops the JVM.
+     *
+     * @param interrupt called on Ctrl-C, returns whether the interrupt was handled
+     * @return the installed handler, or null if signals cannot be handled on this runtime
+     */
+    static InterruptHandler install(BooleanSupplier interrupt) {
+        try {
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Method handle = signalClass.getMethod("handle", signalClass, handlerClass);
+            Method handleSignal = handlerClass.getMethod("handle", signalClass);
+            Object signal = signalClass.getConstructor(String.class).newInstance("INT");
+
+            Object[] previous = new Object[1];
+            Object handler = Proxy.newProxyInstance(InterruptHandler.class.getClassLoader(), new Class[]{handlerClass},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "handle" -> {
+                            if (!interrupt.getAsBoolean() && previous[0] != null) handleSignal.invoke(previous[0], args[0]);
+                            yield null;
+                        }
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        default -> "InterruptHandler";
+                    });
+
+            previous[0] = handle.invoke(null, signal, handler);
+            return new InterruptHandler(handle, signal, previous[0]);
+        } catch (ReflectiveOperationException | LinkageError | IllegalArgumentException e) {
+            // Signal.handle throws an IllegalArgumentException, wrapped in an InvocationTargetException,
+            // on platforms where SIGINT cannot be handled.
+            return null;
+        }
+    }
+
+    /**
+     * Restores the handler that was installed before.
+     */
+    void restore() {
+        if (previous == null) return;
+
+        try {
+            handle.invoke(null, signal, previous);
+        } catch (ReflectiveOperationException e) {
+            // The previous handler was installed before, so restoring it cannot fail.
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package cli.internal;
+
+import cli.api.CommandResult;
+import cli.api.OutputSink;
+
+import java.io.PrintStream;
+
+/**
+ * Writes the output of the interpreter as JSON Lines, one object per command result or line of text.
+ * Results look like {"type":"result","input":"...","command":"...","status":"OK","durationNanos":1200,"value":3}
+ * and text output like {"type":"output","text":"..."}. The shell prefix is never written.
+ */
+public class JsonLinesOutputSink implements OutputSink {
+    private final PrintStream out;
+
+    public JsonLinesOutputSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void prompt(String shellPrefix) {
+    }
+
+    @Override
+    public void println(Object text) {
+        StringBuilder json = new StringBuilder("{\"type\":\"output\",\"text\":");
+        appendString(json, String.valueOf(text));
+        out.println(json.append('}'));
+    }
+
+    @Override
+    public void result(CommandResult result) {
+        StringBuilder json = new StringBuilder("{\"type\":\"result\",\"input\":");
+        appendString(json, result.input());
+        json.append(",\"command\":");
+        appendString(json, result.command());
+        json.append(",\"status\":\"").append(result.status()).append('"');
+        json.append(",\"durationNanos\":").append(result.durationNanos());
+        json.append(",\"value\":");
+        appendValue(json, result.value());
+        json.append(",\"error\":");
+        appendString(json, result.error());
+        if (result.source() != null) {
+            json.append(",\"source\":");
+            appendString(json, result.source());
+            json.append(",\"line\":").append(result.line());
+        }
+        out.println(json.append('}'));
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        out.flush();
+    }
+
+    /**
+     * Appends a returned value, numbers and booleans are written as JSON literals, other objects with toString().
+     */
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value instanceof Boolean || value instanceof Integer || value instanceof Long ||
+                value instanceof Short || value instanceof Byte) {
+            json.append(value);
+        } else if ((value instanceof Double || value instanceof Float) && Double.isFinite(((Number) value).doubleValue())) {
+            json.append(value);
+        } else {
+            appendString(json, value == null ? null : value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
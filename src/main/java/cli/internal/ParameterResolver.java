@@ -2,6 +2,7 @@ package cli.internal;
 
 import cli.api.Command;
 import cli.api.CommandParameter;
+import cli.api.OutputSink;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
@@ -53,14 +54,30 @@ public class ParameterResolver {
         return commandParameters;
     }
 
+    /**
+     * Checks whether one of the parameters of the method uses the key.
+     *
+     * @param m   method to check
+     * @param key key of the flag e.g. --timeout
+     * @return true if a parameter of the method uses the key
+     */
+    public static boolean hasKey(Method m, String key) {
+        for (CommandParameter cp : getCommandParameters(m.getParameters())) {
+            if (cp != null && Arrays.asList(cp.keys()).contains(key)) return true;
+        }
+        return false;
+    }
+
     /**
      * Processes the arguments that are given and checks whether all the required arguments are present.
      *
-     * @param args list of string that are the given arguments
-     * @param m    method to process
+     * @param args  list of string that are the given arguments
+     * @param m     method to process
+     * @param state state of the session used to resolve variables
+     * @param out   sink to report unrecognized parameters to
      * @return list of arguments to be given to method
      */
-    public static List<Object> processArguments(ArrayList<String> args, Method m) {
+    public static List<Object> processArguments(ArrayList<String> args, Method m, CliState state, OutputSink out) {
         Parameter[] params = m.getParameters();
 
         List<Object> parameters = new ArrayList<>();
@@ -102,7 +119,7 @@ public class ParameterResolver {
                 } else if (value.equals("true") || value.equals("false")) {
                     var = Boolean.parseBoolean(value);
                 } else {
-                    Object variable = CliState.getInstance().getVariable(value);
+                    Object variable = state.getVariable(value);
                     if (variable != null) {
                         var = castParameter(clazz, variable);
                     } else {
@@ -122,7 +139,7 @@ public class ParameterResolver {
         }
 
         for (int i = 0; i < args.size(); i++) {
-            System.out.println("Unrecognized parameter: " + args.get(i) + " " + args.get(i+1));
+            out.println("Unrecognized parameter: " + args.get(i) + " " + args.get(i+1));
             i++;
         }
 
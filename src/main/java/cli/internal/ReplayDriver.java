@@ -0,0 +1,207 @@
+package cli.internal;
+
+import cli.api.OutputSink;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a script across a number of concurrent interpreter sessions and reports the throughput and latency
+ * percentiles per command key.
+ * Every session is a separate @see{@link CommandLineInterpreter} with its own state, history and command instances.
+ */
+public class ReplayDriver {
+    // Key under which lines without a command, e.g. "a =", are counted.
+    private static final String unparsedKey = "(unparsed)";
+    private final Class[] cls;
+    private final long commandTimeout;
+
+    /**
+     * @param cls            classes with the commands
+     * @param commandTimeout default timeout of the sessions in milliseconds, 0 for no timeout
+     */
+    public ReplayDriver(Class[] cls, long commandTimeout) {
+        this.cls = cls;
+        this.commandTimeout = commandTimeout;
+    }
+
+    /**
+     * Replays the script and returns the report.
+     * With a positive command rate the sessions are driven open-loop: every command has an intended start time and
+     * its latency is measured from that time, so a slow command also counts against the commands queued behind it.
+     * Otherwise every session runs closed-loop and starts the next command as soon as the previous one finished.
+     *
+     * @param filename          name of the script
+     * @param sessions          number of concurrent sessions
+     * @param iterations        number of times every session runs the script
+     * @param commandsPerSecond target command rate over all sessions, 0 or less for closed-loop
+     * @return the report, without a trailing line separator
+     */
+    public String replay(String filename, int sessions, int iterations, double commandsPerSecond) throws IOException, InterruptedException {
+        if (sessions < 1 || iterations < 1) {
+            throw new IllegalArgumentException("Sessions and iterations should be at least 1.");
+        }
+
+        List<String> lines = readScript(filename);
+        // Interval between two commands of the same session, so the combined rate matches the target.
+        long intervalNanos = commandsPerSecond > 0 ? (long) (sessions * 1_000_000_000L / commandsPerSecond) : 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        List<Future<Map<String, Samples>>> results = new ArrayList<>();
+        long start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < sessions; i++) {
+                long offset = intervalNanos * i / sessions;
+                results.add(executor.submit(() -> runSession(lines, iterations, start + offset, intervalNanos)));
+            }
+
+            Map<String, Samples> merged = new TreeMap<>();
+            for (Future<Map<String, Samples>> result : results) {
+                result.get().forEach((key, samples) -> merged.computeIfAbsent(key, k -> new Samples()).addAll(samples));
+            }
+
+            return report(filename, sessions, merged, System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay session failed: " + e.getCause(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the executable lines of a script, skipping comments and empty lines.
+     *
+     * @param filename name of the script
+     * @return the lines to replay
+     */
+    private List<String> readScript(String filename) throws IOException {
+        List<String> lines = new ArrayList<>();
+
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            String input;
+            while ((input = br.readLine()) != null && !Constants.exitKeywords.contains(input)) {
+                input = CommandLineInterpreter.removeInlineComments(input.trim());
+                if (CommandLineInterpreter.isValidLine(input)) lines.add(input);
+            }
+        }
+
+        return lines;
+    }
+
+    private Map<String, Samples> runSession(List<String> lines, int iterations, long firstStart, long intervalNanos) {
+        CommandLineInterpreter session = new CommandLineInterpreter(cls);
+        session.out = OutputSink.discard();
+        session.setCommandTimeout(commandTimeout);
+        // Errors in scripts called from the replayed script must not exit the JVM.
+        session.interactive = true;
+
+        Map<String, Samples> samples = new HashMap<>();
+        long intended = firstStart;
+
+        for (int i = 0; i < iterations; i++) {
+            for (String line : lines) {
+                long begin;
+                if (intervalNanos > 0) {
+                    long wait = intended - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    begin = intended;
+                    intended += intervalNanos;
+                } else {
+                    begin = System.nanoTime();
+                }
+
+                String key = unparsedKey;
+                boolean failed = false;
+                boolean timedOut = false;
+                try {
+                    key = CommandLineInterpreter.commandKey(line);
+                    session.handleInput(line);
+                } catch (TimeoutException e) {
+                    timedOut = true;
+                } catch (Exception e) {
+                    failed = true;
+                }
+
+                Samples s = samples.computeIfAbsent(key, k -> new Samples());
+                s.add(System.nanoTime() - begin);
+                if (failed) s.errors++;
+                if (timedOut) s.timeouts++;
+            }
+        }
+
+        return samples;
+    }
+
+    private String report(String filename, int sessions, Map<String, Samples> samples, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = samples.values().stream().mapToLong(s -> s.count).sum();
+
+        StringBuilder output = new StringBuilder();
+        output.append(String.format("Replayed \"%s\" with %d session(s): %d command(s) in %.3f s (%.1f commands/s)%n",
+                filename, sessions, total, seconds, total / seconds));
+        output.append(String.format(Constants.replayOutputFormat,
+                "Command", "Count", "Errors", "Timeouts", "Per sec", "p50 (ms)", "p90 (ms)", "p99 (ms)", "Max (ms)"));
+
+        samples.forEach((key, s) -> {
+            s.sort();
+            output.append(String.format(Constants.replayOutputFormat, key, s.count, s.errors, s.timeouts,
+                    String.format("%.1f", s.count / seconds),
+                    millis(s.percentile(0.50)), millis(s.percentile(0.90)), millis(s.percentile(0.99)),
+                    millis(s.percentile(1.0))));
+        });
+
+        return output.toString().stripTrailing();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    /**
+     * Latency samples in nanoseconds for a single command key.
+     */
+    private static class Samples {
+        private long[] values = new long[64];
+        private int count;
+        private int errors;
+        private int timeouts;
+
+        void add(long value) {
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = value;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.count; i++) add(other.values[i]);
+            errors += other.errors;
+            timeouts += other.timeouts;
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, count);
+        }
+
+        /**
+         * Nearest-rank percentile, requires the samples to be sorted.
+         */
+        long percentile(double p) {
+            if (count == 0) return 0;
+            int index = (int) Math.ceil(p * count) - 1;
+            return values[Math.max(0, Math.min(index, count - 1))];
+        }
+    }
+}
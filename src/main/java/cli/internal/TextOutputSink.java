@@ -0,0 +1,51 @@
+package cli.internal;
+
+import cli.api.CommandResult;
+import cli.api.OutputSink;
+
+import java.io.PrintStream;
+
+/**
+ * Writes the output of the interpreter as human-readable text.
+ * Only failed commands are written as results, returned values are shown with the print command.
+ */
+public class TextOutputSink implements OutputSink {
+    private final PrintStream out;
+
+    public TextOutputSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void prompt(String shellPrefix) {
+        out.print(shellPrefix);
+        out.flush();
+    }
+
+    @Override
+    public void println(Object text) {
+        out.println(text);
+    }
+
+    @Override
+    public void result(CommandResult result) {
+        if (result.status() == CommandResult.Status.OK) return;
+
+        if (result.source() == null) {
+            out.println("Error at command: '" + result.input() + "'.");
+        } else {
+            out.println("Error at command: '" + result.input() + "', at line " + result.line() + ", in file \"" + result.source() + "\".");
+        }
+        if (result.error() != null) out.println(result.error());
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        out.flush();
+    }
+}
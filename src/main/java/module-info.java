@@ -1,3 +1,5 @@
 module cli {
+    requires static jdk.unsupported;
+
     exports cli.api;
 }
\ No newline at end of file